@@ -0,0 +1,20 @@
+import java.io.File;
+
+/**
+ * Receives events published by a {@link ChordNode}. Callbacks run on whichever
+ * node thread caused the event, so implementations must hand work off quickly
+ * (a UI should coalesce and apply updates on its own thread).
+ */
+public interface ChordListener {
+
+    /** Successor, predecessor or at least one finger changed. */
+    default void stateChanged(ChordNode node) {
+    }
+
+    /** Outgoing transfer progress; published whenever the completed percentage changes. */
+    default void transferProgress(NodeInfo dest, File file, long sent, long total) {
+    }
+
+    default void fileReceived(File file) {
+    }
+}
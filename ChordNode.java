@@ -1,4 +1,8 @@
 import java.math.BigInteger;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 public class ChordNode {
@@ -10,6 +14,19 @@ public class ChordNode {
     public NodeInfo[] finger;
     public static final int FILE_PORT_OFFSET = 1000;
     private FileTransferServer ftServer;
+    private final Server rpcServer;
+    private volatile boolean left;
+    private final StateStore stateStore;
+    private StateStore.Snapshot remembered;
+    private final List<ChordListener> listeners = new CopyOnWriteArrayList<>();
+
+    // bounded pools for operations requested by callers: short control operations
+    // (join, leave, stabilize...) never queue behind long file transfers, and
+    // maintenance rounds run on their own scheduler
+    private final ThreadPoolExecutor workers = boundedPool(4, 32, "chord-worker");
+    private final ThreadPoolExecutor transfers = boundedPool(2, 8, "chord-transfer");
+    private final ScheduledExecutorService maintenance = Executors
+            .newSingleThreadScheduledExecutor(daemonThreads("chord-maintenance"));
 
     public ChordNode(String ip, int port) {
         this(ip, port, port + FILE_PORT_OFFSET);
@@ -25,11 +42,122 @@ public class ChordNode {
 
         logger.info("Node initialized: " + self);
 
-        // start file transfer server on provided file port
+        // routing state from a previous run, used by rejoin()
+        stateStore = new StateStore(self);
+        remembered = stateStore.load(self);
+
+        // start RPC server and file transfer server on provided file port
+        rpcServer = new Server(this);
+        rpcServer.start();
         ftServer = new FileTransferServer(this, filePort);
         ftServer.start();
     }
 
+    /** Where this node keeps received files; one directory per node, like the state file. */
+    public java.io.File storageDir() {
+        return new java.io.File(FileTransferServer.STORAGE_DIR, self.ip + "_" + self.port);
+    }
+
+    public boolean hasLeft() {
+        return left;
+    }
+
+    private static ThreadPoolExecutor boundedPool(int threads, int queueSize, String prefix) {
+        // core == max: a ThreadPoolExecutor only grows past its core size once the queue is full
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueSize), daemonThreads(prefix));
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger count = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, prefix + "-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    public void addListener(ChordListener l) {
+        listeners.add(l);
+    }
+
+    public void removeListener(ChordListener l) {
+        listeners.remove(l);
+    }
+
+    private void fireStateChanged() {
+        for (ChordListener l : listeners) {
+            try {
+                l.stateChanged(this);
+            } catch (RuntimeException e) {
+                logger.warning("Listener failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private void fireTransferProgress(NodeInfo dest, java.io.File file, long sent, long total) {
+        for (ChordListener l : listeners) {
+            try {
+                l.transferProgress(dest, file, sent, total);
+            } catch (RuntimeException e) {
+                logger.warning("Listener failed: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Runs a short control operation on the node's worker pool. Throws
+     * {@link RejectedExecutionException} when the pool's queue is full.
+     */
+    public void execute(Runnable task) {
+        workers.execute(logFailures(task));
+    }
+
+    /**
+     * Runs a file transfer on the node's transfer pool. Throws
+     * {@link RejectedExecutionException} when the pool's queue is full.
+     */
+    public void executeTransfer(Runnable task) {
+        transfers.execute(logFailures(task));
+    }
+
+    private Runnable logFailures(Runnable task) {
+        return () -> {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                logger.log(Level.WARNING, "Task failed", e);
+            }
+        };
+    }
+
+    private void stopMaintenance() {
+        maintenance.shutdownNow();
+        try {
+            // let a round already in flight finish so it cannot re-notify the successor afterwards
+            if (!maintenance.awaitTermination(10, TimeUnit.SECONDS))
+                logger.warning("Maintenance round still running after leave");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public void startMaintenance(long periodMillis) {
+        maintenance.scheduleWithFixedDelay(() -> {
+            try {
+                checkPredecessor();
+                stabilize();
+                fixFingers();
+                saveState();
+            } catch (RuntimeException e) {
+                // an escaping exception would cancel every later round
+                logger.warning("Maintenance round failed: " + e.getMessage());
+            }
+        }, 0, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
     public boolean sendFile(NodeInfo dest, java.io.File file) {
         return sendFile(dest, file, null);
     }
@@ -67,12 +195,18 @@ public class ChordNode {
                         raf.seek(offset);
                     byte[] buffer = new byte[8192];
                     long sent = offset;
+                    int lastPct = -1;
                     int r;
                     while ((r = raf.read(buffer)) != -1) {
                         out.write(buffer, 0, r);
                         sent += r;
                         if (progressCallback != null)
                             progressCallback.accept(sent, total);
+                        int pct = total == 0 ? 100 : (int) ((sent * 100) / total);
+                        if (pct != lastPct) {
+                            lastPct = pct;
+                            fireTransferProgress(dest, file, sent, total);
+                        }
                     }
                     out.flush();
                     logger.info("Sent file " + file.getName() + " to " + dest + " (" + total + " bytes)");
@@ -91,9 +225,67 @@ public class ChordNode {
 
     public void notifyFileReceived(java.io.File f) {
         logger.info("Received file: " + f.getAbsolutePath());
-        try {
-            ChordUI.notifyFileReceived(f);
-        } catch (Throwable ignored) {
+        for (ChordListener l : listeners) {
+            try {
+                l.fileReceived(f);
+            } catch (RuntimeException e) {
+                logger.warning("Listener failed: " + e.getMessage());
+            }
+        }
+    }
+
+    public void notifyHandoffReceived(int count) {
+        logger.info("Received " + count + " file(s) handed off by a leaving predecessor");
+    }
+
+    public boolean sendFiles(NodeInfo dest, java.io.File[] files) {
+        if (dest == null || files == null)
+            return false;
+        int port = dest.filePort > 0 ? dest.filePort : dest.port + FILE_PORT_OFFSET;
+        final int CONNECT_TIMEOUT = 5000;
+
+        try (java.net.Socket s = new java.net.Socket()) {
+            s.connect(new java.net.InetSocketAddress(dest.ip, port), CONNECT_TIMEOUT);
+            s.setSoTimeout(10000);
+            java.io.OutputStream out = s.getOutputStream();
+            java.io.PrintWriter writer = new java.io.PrintWriter(out, true);
+            java.io.BufferedReader in = new java.io.BufferedReader(
+                    new java.io.InputStreamReader(s.getInputStream()));
+
+            writer.println("FILE_BULK " + files.length);
+            String resp = in.readLine();
+            if (resp == null || !resp.startsWith("OK"))
+                return false;
+
+            java.io.DataOutputStream data = new java.io.DataOutputStream(new java.io.BufferedOutputStream(out));
+            byte[] buffer = new byte[8192];
+            long total = 0;
+            for (java.io.File f : files) {
+                try (java.io.InputStream fin = new java.io.FileInputStream(f)) {
+                    long remaining = f.length();
+                    data.writeUTF(f.getName());
+                    data.writeLong(remaining);
+                    while (remaining > 0) {
+                        int r = fin.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                        if (r == -1)
+                            throw new java.io.EOFException(f.getName() + " shrank while being sent");
+                        data.write(buffer, 0, r);
+                        remaining -= r;
+                    }
+                    total += f.length();
+                }
+            }
+            data.flush();
+
+            // the receiver acknowledges once every file is on disk
+            resp = in.readLine();
+            if (resp == null || !resp.startsWith("OK"))
+                return false;
+            logger.info("Sent " + files.length + " file(s) to " + dest + " in bulk (" + total + " bytes)");
+            return true;
+        } catch (Exception e) {
+            logger.warning("Bulk file send failed: " + e.getMessage());
+            return false;
         }
     }
 
@@ -106,9 +298,64 @@ public class ChordNode {
             successor = RPC.findSuccessor(contact, self.id);
             logger.info("Joined ring via contact: " + contact + " ; Successor: " + successor);
         }
+        fireStateChanged();
+    }
+
+    /**
+     * Rejoins the ring through any peer remembered from the last snapshot that is
+     * still alive, and warm-starts the finger table with the remembered fingers
+     * that still answer. Returns false if there was no snapshot or no live peer.
+     */
+    public boolean rejoin() {
+        StateStore.Snapshot snap = remembered;
+        remembered = null;
+        if (snap == null)
+            return false;
+
+        Map<NodeInfo, Boolean> live = new HashMap<>();
+        Set<NodeInfo> candidates = new LinkedHashSet<>();
+        candidates.add(snap.successor);
+        candidates.addAll(Arrays.asList(snap.finger));
+        candidates.add(snap.predecessor);
+        candidates.remove(null);
+        candidates.remove(self);
+
+        for (NodeInfo c : candidates) {
+            if (!isLive(c, live))
+                continue;
+            NodeInfo succ = RPC.findSuccessor(c, self.id);
+            if (succ == null)
+                continue;
+            if (succ.equals(self)) // the ring still lists us from before the restart
+                succ = isLive(snap.successor, live) ? snap.successor : c;
+            successor = succ;
+            for (int i = 0; i < HashUtil.M; i++)
+                finger[i] = isLive(snap.finger[i], live) ? snap.finger[i] : successor;
+            logger.info("Rejoined ring via remembered peer: " + c + " ; Successor: " + successor);
+            fireStateChanged();
+            return true;
+        }
+        logger.info("No remembered peer is reachable");
+        return false;
+    }
+
+    private boolean isLive(NodeInfo n, Map<NodeInfo, Boolean> cache) {
+        if (n == null || n.equals(self))
+            return false;
+        return cache.computeIfAbsent(n, RPC::ping);
+    }
+
+    public void saveState() {
+        // nothing worth remembering (yet, or any more after leaving); keep
+        // whatever the last useful snapshot was
+        if (left || successor.equals(self) && (predecessor == null || predecessor.equals(self)))
+            return;
+        stateStore.save(self, successor, predecessor, finger.clone());
     }
 
     public NodeInfo findSuccessor(BigInteger id) {
+        if (left)
+            return null;
         if (HashUtil.inInterval(id, self.id, successor.id)) {
             logger.info("Successor of " + id + " is " + successor);
             return successor;
@@ -118,7 +365,22 @@ public class ChordNode {
             return self;
 
         logger.info("Routing lookup of " + id + " via " + n0);
-        return RPC.findSuccessor(n0, id);
+        NodeInfo res = RPC.findSuccessor(n0, id);
+        // a live n0 may fail a lookup further downstream; only drop it if it is gone (or has left)
+        if (res == null && !n0.equals(successor) && !RPC.ping(n0)) {
+            logger.warning("Lookup via " + n0 + " failed, dropping it from fingers");
+            boolean changed = false;
+            for (int i = 0; i < HashUtil.M; i++) {
+                if (n0.equals(finger[i])) {
+                    finger[i] = successor;
+                    changed = true;
+                }
+            }
+            if (changed)
+                fireStateChanged();
+            return findSuccessor(id);
+        }
+        return res;
     }
 
     private NodeInfo closestPrecedingNode(BigInteger id) {
@@ -132,11 +394,14 @@ public class ChordNode {
     }
 
     public void stabilize() {
+        if (left)
+            return;
         try {
             NodeInfo x = RPC.getPredecessor(successor);
             if (x != null && HashUtil.inInterval(x.id, self.id, successor.id)) {
                 successor = x;
                 logger.info("Stabilize: Updated successor to " + successor);
+                fireStateChanged();
             }
             RPC.notify(successor, self);
         } catch (Exception e) {
@@ -145,22 +410,126 @@ public class ChordNode {
     }
 
     public void notify(NodeInfo n) {
+        if (left)
+            return;
         if (predecessor == null || HashUtil.inInterval(n.id, predecessor.id, self.id)) {
             predecessor = n;
             logger.info("Notify: Updated predecessor to " + predecessor);
+            fireStateChanged();
+        }
+    }
+
+    public void checkPredecessor() {
+        if (left)
+            return;
+        NodeInfo p = predecessor;
+        if (p != null && !RPC.ping(p) && predecessor == p) {
+            predecessor = null;
+            logger.info("CheckPredecessor: predecessor " + p + " is unreachable, cleared");
+            fireStateChanged();
+        }
+    }
+
+    /**
+     * Leaves the ring gracefully: stops maintenance, hands the stored files to
+     * the successor, which takes over this node's keys, and tells the successor
+     * and predecessor to splice around this node. The node then stops serving;
+     * start a new ChordNode to rejoin.
+     */
+    public synchronized void leave() {
+        if (left)
+            return;
+        stopMaintenance();
+        saveState();
+        left = true;
+
+        NodeInfo succ = successor;
+        NodeInfo pred = predecessor;
+        if (succ.equals(self)) {
+            logger.info("Leave: no other node in the ring");
+        } else {
+            java.io.File[] files = storageDir()
+                    .listFiles(f -> f.isFile() && !FileTransferServer.isIncomplete(f));
+            if (files != null && files.length > 0) {
+                if (sendFiles(succ, files)) {
+                    // the successor owns them now; keeping them would resend them on the next leave
+                    for (java.io.File f : files) {
+                        if (!f.delete())
+                            logger.warning("Leave: could not delete handed-off file " + f);
+                    }
+                } else {
+                    logger.warning("Leave: handoff of " + files.length + " file(s) to " + succ + " failed");
+                }
+            }
+
+            if (!RPC.leave(succ, self, pred))
+                logger.warning("Leave: successor " + succ + " did not acknowledge");
+            if (pred != null && !pred.equals(succ) && !RPC.leave(pred, self, succ))
+                logger.warning("Leave: predecessor " + pred + " did not acknowledge");
+        }
+
+        rpcServer.close();
+        ftServer.close();
+        workers.shutdown();
+        transfers.shutdown();
+
+        successor = self;
+        predecessor = null;
+        for (int i = 0; i < HashUtil.M; i++)
+            finger[i] = self;
+        logger.info("Left ring");
+        fireStateChanged();
+    }
+
+    public void handleLeave(NodeInfo leaving, NodeInfo replacement) {
+        boolean changed = false;
+        if (leaving.equals(successor)) {
+            successor = replacement != null ? replacement : self;
+            logger.info("Leave: " + leaving + " left, successor now " + successor);
+            changed = true;
+        } else if (leaving.equals(predecessor) || predecessor == null) {
+            // we are the leaving node's successor; checkPredecessor may already have
+            // cleared it while it was still handing off its data
+            NodeInfo p = replacement == null || replacement.equals(self) ? null : replacement;
+            if (!Objects.equals(p, predecessor)) {
+                predecessor = p;
+                logger.info("Leave: " + leaving + " left, predecessor now " + predecessor);
+                changed = true;
+            }
+        }
+        if (leaving.equals(predecessor)) { // two-node ring: it was both neighbours
+            predecessor = null;
+            changed = true;
+        }
+        for (int i = 0; i < HashUtil.M; i++) {
+            if (leaving.equals(finger[i])) {
+                finger[i] = successor;
+                changed = true;
+            }
         }
+        if (changed)
+            fireStateChanged();
     }
 
     public void fixFingers() {
+        if (left)
+            return;
+        boolean changed = false;
         for (int i = 0; i < HashUtil.M; i++) {
             BigInteger start = self.id.add(BigInteger.valueOf(2).pow(i))
                     .mod(HashUtil.TWO_POW_M);
             NodeInfo oldFinger = finger[i];
-            finger[i] = findSuccessor(start);
+            NodeInfo f = findSuccessor(start);
+            if (f == null) // lookup failed; keep the old entry until the next round
+                continue;
+            finger[i] = f;
             if (!finger[i].equals(oldFinger)) {
                 logger.info("Finger[" + i + "] updated: " + oldFinger + " -> " + finger[i]);
+                changed = true;
             }
         }
+        if (changed)
+            fireStateChanged();
     }
 
     public void printState() {
@@ -2,8 +2,11 @@ import javax.swing.*;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
-public class ChordUI extends JFrame {
+public class ChordUI extends JFrame implements ChordListener {
     private JTextField ipField = new JTextField("127.0.0.1", 12);
     private JTextField portField = new JTextField("5000", 6);
     private JTextField filePortField = new JTextField("6000", 6);
@@ -14,8 +17,14 @@ public class ChordUI extends JFrame {
     private JList<NodeInfo> peersList = new JList<>(peersModel);
     private JButton sendFileBtn = new JButton("Send File (placeholder)");
 
-    private ChordNode node;
-    private static ChordUI instance;
+    private volatile ChordNode node;
+
+    // node events only mark the UI dirty; one queued EDT task applies them all
+    private final AtomicBoolean refreshPending = new AtomicBoolean();
+    private volatile boolean stateDirty;
+    private final Map<String, Integer> pendingProgress = new ConcurrentHashMap<>();
+    private final Map<String, JProgressBar> transferBars = new HashMap<>();
+    private String lastState = "";
 
     public ChordUI() {
         super("Chord Node UI");
@@ -23,6 +32,13 @@ public class ChordUI extends JFrame {
         buildUI();
         pack();
         setLocationRelativeTo(null);
+
+        // one hook for the lifetime of the UI; it leaves with whichever node is current
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            ChordNode n = node;
+            if (n != null)
+                n.leave();
+        }));
     }
 
     private void buildUI() {
@@ -54,8 +70,22 @@ public class ChordUI extends JFrame {
         fixBtn.addActionListener(e -> runIfNode(n -> n.fixFingers()));
         top.add(fixBtn);
 
+        JButton leaveBtn = new JButton("Leave Ring");
+        leaveBtn.addActionListener(e -> runIfNode(n -> {
+            n.leave();
+            SwingUtilities.invokeLater(() -> {
+                if (node == n)
+                    node = null;
+                append("Left the ring. Start a node to rejoin.");
+            });
+        }));
+        top.add(leaveBtn);
+
         JButton stateBtn = new JButton("Show State");
-        stateBtn.addActionListener(e -> updateStateDisplay());
+        stateBtn.addActionListener(e -> {
+            lastState = "";
+            updateStateDisplay();
+        });
         top.add(stateBtn);
 
         getContentPane().setLayout(new BorderLayout());
@@ -84,25 +114,36 @@ public class ChordUI extends JFrame {
             java.io.File file = chooser.getSelectedFile();
             append("Sending " + file.getName() + " to " + sel + "...");
 
-            // progress dialog
-            JDialog dlg = new JDialog(this, "Sending: " + file.getName(), true);
+            // progress dialog, fed by transferProgress events
+            JDialog dlg = new JDialog(this, "Sending: " + file.getName(), false);
             JProgressBar bar = new JProgressBar(0, 100);
             bar.setStringPainted(true);
             dlg.getContentPane().add(bar);
             dlg.setSize(400, 80);
             dlg.setLocationRelativeTo(this);
+            String key = transferKey(sel, file);
+            transferBars.put(key, bar);
 
-            new Thread(() -> {
-                boolean[] result = new boolean[1];
-                result[0] = node.sendFile(sel, file, (sent, total) -> {
-                    int pct = total == 0 ? 0 : (int) ((sent * 100) / total);
-                    SwingUtilities.invokeLater(() -> bar.setValue(pct));
-                });
-                SwingUtilities.invokeLater(() -> {
-                    dlg.dispose();
-                    append((result[0] ? "File sent: " : "File send failed: ") + file.getName());
+            try {
+                ChordNode n = node;
+                n.executeTransfer(() -> {
+                    boolean ok = false;
+                    try {
+                        ok = n.sendFile(sel, file);
+                    } finally {
+                        boolean sent = ok;
+                        SwingUtilities.invokeLater(() -> {
+                            transferBars.remove(key);
+                            dlg.dispose();
+                            append((sent ? "File sent: " : "File send failed: ") + file.getName());
+                        });
+                    }
                 });
-            }).start();
+            } catch (RejectedExecutionException ex) {
+                transferBars.remove(key);
+                append("Node is busy, try again: " + file.getName());
+                return;
+            }
 
             dlg.setVisible(true);
         });
@@ -125,26 +166,12 @@ public class ChordUI extends JFrame {
             filePort = port + 1000;
         }
         node = new ChordNode(ip, port, filePort);
-        instance = this;
-        new Server(node).start();
+        node.addListener(this);
         append("Node started: " + node.self);
+        updateStateDisplay();
 
-        // start periodic background maintenance
-        new Thread(() -> {
-            try {
-                while (true) {
-                    node.stabilize();
-                    node.fixFingers();
-                    SwingUtilities.invokeLater(() -> {
-                        updateStateDisplay();
-                        refreshPeers();
-                    });
-                    Thread.sleep(15000);
-                }
-            } catch (InterruptedException ex) {
-                // exit thread
-            }
-        }).start();
+        // periodic background maintenance; changes arrive as stateChanged events
+        node.startMaintenance(15000);
     }
 
     private void onJoin(ActionEvent e) {
@@ -155,14 +182,62 @@ public class ChordUI extends JFrame {
         String cip = contactIpField.getText().trim();
         String cport = contactPortField.getText().trim();
         if (cip.isEmpty() || cport.isEmpty()) {
-            node.join(null);
-            append("Created new ring (no contact provided).\n");
+            runIfNode(n -> {
+                if (n.rejoin()) {
+                    append("Rejoined via remembered peers: successor " + n.successor + "\n");
+                    return;
+                }
+                n.join(null);
+                append("Created new ring (no contact provided).\n");
+            });
         } else {
             NodeInfo contact = new NodeInfo(null, cip, Integer.parseInt(cport));
-            node.join(contact);
-            append("Joined via contact: " + contact + "\n");
+            runIfNode(n -> {
+                n.join(contact);
+                append("Joined via contact: " + contact + "\n");
+            });
+        }
+    }
+
+    @Override
+    public void stateChanged(ChordNode n) {
+        stateDirty = true;
+        requestRefresh();
+    }
+
+    @Override
+    public void transferProgress(NodeInfo dest, java.io.File file, long sent, long total) {
+        pendingProgress.put(transferKey(dest, file), total == 0 ? 100 : (int) ((sent * 100) / total));
+        requestRefresh();
+    }
+
+    @Override
+    public void fileReceived(java.io.File f) {
+        showFileReceived(f);
+    }
+
+    private static String transferKey(NodeInfo dest, java.io.File file) {
+        return dest + "|" + file.getAbsolutePath();
+    }
+
+    private void requestRefresh() {
+        if (refreshPending.compareAndSet(false, true))
+            SwingUtilities.invokeLater(this::applyPendingUpdates);
+    }
+
+    private void applyPendingUpdates() {
+        refreshPending.set(false);
+        if (stateDirty) {
+            stateDirty = false;
+            updateStateDisplay();
+        }
+        // remove(key) returns the newest value, so a concurrent update is never dropped
+        for (String key : pendingProgress.keySet()) {
+            Integer pct = pendingProgress.remove(key);
+            JProgressBar bar = transferBars.get(key);
+            if (pct != null && bar != null)
+                bar.setValue(pct);
         }
-        updateStateDisplay();
     }
 
     private void updateStateDisplay() {
@@ -175,7 +250,11 @@ public class ChordUI extends JFrame {
         sb.append("Fingers:\n");
         for (int i = 0; i < node.finger.length; i++)
             sb.append("[" + i + "] -> ").append(node.finger[i]).append('\n');
-        append(sb.toString());
+        String state = sb.toString();
+        if (state.equals(lastState))
+            return;
+        lastState = state;
+        append(state);
         refreshPeers();
     }
 
@@ -196,12 +275,12 @@ public class ChordUI extends JFrame {
         // remove self from peers list
         set.remove(node.self);
 
-        // update model
-        SwingUtilities.invokeLater(() -> {
-            peersModel.clear();
-            for (NodeInfo p : set)
-                peersModel.addElement(p);
-        });
+        // update model only when the peer set actually changed, so selection survives
+        if (new ArrayList<>(set).equals(Collections.list(peersModel.elements())))
+            return;
+        peersModel.clear();
+        for (NodeInfo p : set)
+            peersModel.addElement(p);
     }
 
     private void append(String s) {
@@ -216,15 +295,12 @@ public class ChordUI extends JFrame {
             append("Start a node first.");
             return;
         }
-        new Thread(() -> {
-            c.accept(node);
-            SwingUtilities.invokeLater(this::updateStateDisplay);
-        }).start();
-    }
-
-    public static void notifyFileReceived(java.io.File f) {
-        if (instance != null)
-            instance.showFileReceived(f);
+        ChordNode n = node;
+        try {
+            n.execute(() -> c.accept(n));
+        } catch (RejectedExecutionException ex) {
+            append("Node is busy, try again.");
+        }
     }
 
     private void showFileReceived(java.io.File f) {
@@ -5,8 +5,14 @@ import java.text.SimpleDateFormat;
 import java.util.Date;
 
 public class FileTransferServer extends Thread {
+    public static final String STORAGE_DIR = "received";
+    // in-progress uploads (resumable) and bulk handoffs not yet complete
+    public static final String PARTIAL_SUFFIX = ".part";
+    public static final String HANDOFF_SUFFIX = ".handoff";
     private final int port;
     private final ChordNode node;
+    private volatile ServerSocket serverSocket;
+    private volatile boolean closed;
 
     public FileTransferServer(ChordNode node, int port) {
         this.node = node;
@@ -15,12 +21,29 @@ public class FileTransferServer extends Thread {
 
     public void run() {
         try (ServerSocket server = new ServerSocket(port)) {
-            while (true) {
+            serverSocket = server;
+            while (!closed) {
                 Socket s = server.accept();
                 new Thread(() -> handle(s)).start();
             }
         } catch (Exception e) {
-            e.printStackTrace();
+            if (!closed)
+                e.printStackTrace();
+        }
+    }
+
+    public static boolean isIncomplete(File f) {
+        return f.getName().endsWith(PARTIAL_SUFFIX) || f.getName().endsWith(HANDOFF_SUFFIX);
+    }
+
+    public void close() {
+        closed = true;
+        ServerSocket ss = serverSocket;
+        if (ss != null) {
+            try {
+                ss.close();
+            } catch (IOException ignored) {
+            }
         }
     }
 
@@ -33,17 +56,15 @@ public class FileTransferServer extends Thread {
             if (header == null)
                 return;
             String[] parts = header.split(" ", 3);
-            if (parts.length < 3)
-                return;
 
-            if (parts[0].equals("FILE_OFFER")) {
+            if (parts[0].equals("FILE_OFFER") && parts.length >= 3) {
                 String fileName = parts[1];
                 long totalSize = Long.parseLong(parts[2]);
 
-                File dir = new File("received");
+                File dir = node.storageDir();
                 if (!dir.exists())
                     dir.mkdirs();
-                File outFile = new File(dir, fileName);
+                File outFile = new File(dir, fileName + PARTIAL_SUFFIX);
                 long existing = outFile.exists() ? outFile.length() : 0L;
 
                 out.println("OK " + existing);
@@ -61,6 +82,9 @@ public class FileTransferServer extends Thread {
                         raf.write(buffer, 0, r);
                         remaining -= r;
                     }
+                    // keep the partial file so the sender's next offer resumes from it
+                    if (remaining > 0)
+                        return;
                 }
 
                 // rename with timestamp to avoid overwriting
@@ -69,6 +93,8 @@ public class FileTransferServer extends Thread {
                 outFile.renameTo(saved);
 
                 node.notifyFileReceived(saved);
+            } else if (parts[0].equals("FILE_BULK") && parts.length >= 2) {
+                receiveBulk(s, Integer.parseInt(parts[1]), out);
             }
 
         } catch (Exception e) {
@@ -80,4 +106,46 @@ public class FileTransferServer extends Thread {
             }
         }
     }
+
+    // Stores a batch of files handed off by a leaving node: each entry is the
+    // file name and size followed by its bytes, all on one connection.
+    private void receiveBulk(Socket s, int count, PrintWriter out) throws IOException {
+        File dir = node.storageDir();
+        if (!dir.exists())
+            dir.mkdirs();
+
+        out.println("OK");
+        DataInputStream data = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+        byte[] buffer = new byte[8192];
+        for (int i = 0; i < count; i++) {
+            String fileName = new File(data.readUTF()).getName();
+            long remaining = data.readLong();
+
+            File tmp = new File(dir, fileName + HANDOFF_SUFFIX);
+            try (OutputStream fout = new FileOutputStream(tmp)) {
+                while (remaining > 0) {
+                    int r = data.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                    if (r == -1)
+                        throw new EOFException("Handoff of " + fileName + " truncated");
+                    fout.write(buffer, 0, r);
+                    remaining -= r;
+                }
+            } catch (IOException e) {
+                tmp.delete();
+                throw e;
+            }
+
+            File outFile = new File(dir, fileName);
+            if (outFile.exists()) {
+                String ts = new SimpleDateFormat("yyyyMMddHHmmss").format(new Date());
+                outFile = new File(dir, ts + "_" + fileName);
+            }
+            if (!tmp.renameTo(outFile)) {
+                tmp.delete();
+                throw new IOException("Could not store handed-off file " + outFile);
+            }
+        }
+        out.println("OK " + count);
+        node.notifyHandoffReceived(count);
+    }
 }
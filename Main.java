@@ -17,16 +17,19 @@ public class Main {
         int port = Integer.parseInt(args[1]);
 
         ChordNode node = new ChordNode(ip, port);
-        new Server(node).start();
 
         if (args.length == 4) {
             NodeInfo contact = new NodeInfo(null, args[2], Integer.parseInt(args[3]));
             node.join(contact);
+        } else {
+            node.rejoin();
         }
 
+        // Ctrl-C / SIGTERM leaves the ring instead of looking like a crash
+        Runtime.getRuntime().addShutdownHook(new Thread(node::leave));
+
+        node.startMaintenance(15000);
         while (true) {
-            node.stabilize();
-            node.fixFingers();
             node.printState();
             Thread.sleep(15000);
         }
@@ -3,29 +3,36 @@ import java.net.*;
 import java.math.BigInteger;
 
 public class RPC {
+    private static final int TIMEOUT = 2000;
+    // FIND_SUCCESSOR is answered recursively, so a healthy reply may take several hops
+    private static final int LOOKUP_TIMEOUT = 30000;
 
     static NodeInfo findSuccessor(NodeInfo n, BigInteger id) {
-        return request(n, "FIND_SUCCESSOR " + id);
+        return request(n, "FIND_SUCCESSOR " + id, LOOKUP_TIMEOUT);
     }
 
     static NodeInfo getPredecessor(NodeInfo n) {
-        return request(n, "GET_PREDECESSOR");
+        return request(n, "GET_PREDECESSOR", TIMEOUT);
     }
 
     static void notify(NodeInfo n, NodeInfo self) {
-        request(n, "NOTIFY " + self.id + " " + self.ip + " " + self.port + " " + self.filePort);
+        request(n, "NOTIFY " + self.id + " " + self.ip + " " + self.port + " " + self.filePort, TIMEOUT);
     }
 
-    private static NodeInfo request(NodeInfo n, String msg) {
-        try (Socket s = new Socket(n.ip, n.port);
-                BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream()));
-                PrintWriter out = new PrintWriter(s.getOutputStream(), true)) {
+    static boolean ping(NodeInfo n) {
+        return "PONG".equals(send(n, "PING", TIMEOUT));
+    }
 
-            out.println(msg);
-            String res = in.readLine();
-            if (res == null || res.equals("NULL"))
-                return null;
+    static boolean leave(NodeInfo n, NodeInfo self, NodeInfo replacement) {
+        return "OK".equals(send(n, "LEAVE " + self + " " + (replacement == null ? "NULL" : replacement),
+                TIMEOUT));
+    }
 
+    private static NodeInfo request(NodeInfo n, String msg, int readTimeout) {
+        String res = send(n, msg, readTimeout);
+        if (res == null || res.equals("NULL"))
+            return null;
+        try {
             String[] p = res.split(" ");
             if (p.length >= 5) {
                 return new NodeInfo(new BigInteger(p[1]), p[2], Integer.parseInt(p[3]), Integer.parseInt(p[4]));
@@ -36,4 +43,18 @@ public class RPC {
             return null;
         }
     }
+
+    private static String send(NodeInfo n, String msg, int readTimeout) {
+        try (Socket s = new Socket()) {
+            s.connect(new InetSocketAddress(n.ip, n.port), TIMEOUT);
+            s.setSoTimeout(readTimeout);
+            BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream()));
+            PrintWriter out = new PrintWriter(s.getOutputStream(), true);
+
+            out.println(msg);
+            return in.readLine();
+        } catch (Exception e) {
+            return null;
+        }
+    }
 }
@@ -6,6 +6,8 @@ import java.math.BigInteger;
 public class Server extends Thread {
     private final ChordNode node;
     private final Logger logger = LogUtil.getLogger("Server-" + Thread.currentThread().threadId());
+    private volatile ServerSocket serverSocket;
+    private volatile boolean closed;
 
     public Server(ChordNode node) {
         this.node = node;
@@ -13,12 +15,25 @@ public class Server extends Thread {
 
     public void run() {
         try (ServerSocket server = new ServerSocket(node.self.port)) {
-            while (true) {
+            serverSocket = server;
+            while (!closed) {
                 Socket s = server.accept();
                 new Thread(() -> handle(s)).start();
             }
         } catch (Exception e) {
-            e.printStackTrace();
+            if (!closed)
+                e.printStackTrace();
+        }
+    }
+
+    public void close() {
+        closed = true;
+        ServerSocket ss = serverSocket;
+        if (ss != null) {
+            try {
+                ss.close();
+            } catch (IOException ignored) {
+            }
         }
     }
 
@@ -29,9 +44,16 @@ public class Server extends Thread {
             String[] cmd = in.readLine().split(" ");
             logger.info("Received RPC: " + String.join(" ", cmd));
 
+            // a node that has left no longer owns any keys or answers for the ring
+            if (node.hasLeft()) {
+                out.println("NULL");
+                return;
+            }
+
             switch (cmd[0]) {
                 case "FIND_SUCCESSOR":
-                    out.println("NODE " + node.findSuccessor(new BigInteger(cmd[1])));
+                    NodeInfo succ = node.findSuccessor(new BigInteger(cmd[1]));
+                    out.println(succ == null ? "NULL" : "NODE " + succ);
                     break;
                 case "GET_PREDECESSOR":
                     out.println(node.predecessor == null ? "NULL" : "NODE " + node.predecessor);
@@ -45,6 +67,18 @@ public class Server extends Thread {
                     }
                     out.println("OK");
                     break;
+                case "LEAVE":
+                    NodeInfo leaving = new NodeInfo(new BigInteger(cmd[1]), cmd[2], Integer.parseInt(cmd[3]),
+                            Integer.parseInt(cmd[4]));
+                    NodeInfo replacement = cmd[5].equals("NULL") ? null
+                            : new NodeInfo(new BigInteger(cmd[5]), cmd[6], Integer.parseInt(cmd[7]),
+                                    Integer.parseInt(cmd[8]));
+                    node.handleLeave(leaving, replacement);
+                    out.println("OK");
+                    break;
+                case "PING":
+                    out.println("PONG");
+                    break;
                 default:
                     out.println("NULL");
             }
@@ -0,0 +1,107 @@
+import java.io.*;
+import java.math.BigInteger;
+import java.nio.file.*;
+import java.util.logging.Logger;
+
+public class StateStore {
+    private final Logger logger = LogUtil.getLogger("StateStore-" + Thread.currentThread().threadId());
+    private final File file;
+
+    public static class Snapshot {
+        public NodeInfo successor;
+        public NodeInfo predecessor;
+        public NodeInfo[] finger = new NodeInfo[HashUtil.M];
+    }
+
+    public StateStore(NodeInfo self) {
+        this(new File("state", self.ip + "_" + self.port + ".state"));
+    }
+
+    public StateStore(File file) {
+        this.file = file;
+    }
+
+    public void save(NodeInfo self, NodeInfo successor, NodeInfo predecessor, NodeInfo[] finger) {
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (dir != null && !dir.exists())
+            dir.mkdirs();
+        File tmp = new File(dir, file.getName() + ".tmp");
+        try (PrintWriter out = new PrintWriter(new FileWriter(tmp))) {
+            out.println("SELF " + self);
+            out.println("SUCCESSOR " + (successor == null ? "NULL" : successor));
+            out.println("PREDECESSOR " + (predecessor == null ? "NULL" : predecessor));
+            for (int i = 0; i < finger.length; i++)
+                out.println("FINGER " + i + " " + (finger[i] == null ? "NULL" : finger[i]));
+        } catch (IOException e) {
+            logger.warning("Could not write state file " + tmp + ": " + e.getMessage());
+            return;
+        }
+        try {
+            // replace in one step so a crash mid-write never leaves a truncated snapshot
+            try {
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            logger.warning("Could not replace state file " + file + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Reads the snapshot written for {@code self}. Entries whose id does not match
+     * the hash of their address are dropped, and a file written by a different
+     * node (or for a different ring size) is ignored altogether.
+     */
+    public Snapshot load(NodeInfo self) {
+        if (!file.exists())
+            return null;
+        Snapshot snap = new Snapshot();
+        try (BufferedReader in = new BufferedReader(new FileReader(file))) {
+            String line;
+            boolean selfMatches = false;
+            while ((line = in.readLine()) != null) {
+                String[] p = line.trim().split(" ");
+                switch (p[0]) {
+                    case "SELF":
+                        selfMatches = self.equals(parse(p, 1));
+                        break;
+                    case "SUCCESSOR":
+                        snap.successor = parse(p, 1);
+                        break;
+                    case "PREDECESSOR":
+                        snap.predecessor = parse(p, 1);
+                        break;
+                    case "FINGER":
+                        int i = Integer.parseInt(p[1]);
+                        if (i >= 0 && i < HashUtil.M)
+                            snap.finger[i] = parse(p, 2);
+                        break;
+                    default:
+                        break;
+                }
+            }
+            if (!selfMatches) {
+                logger.warning("Ignoring state file " + file + ": written by another node");
+                return null;
+            }
+        } catch (Exception e) {
+            logger.warning("Ignoring unreadable state file " + file + ": " + e.getMessage());
+            return null;
+        }
+        logger.info("Loaded routing state from " + file);
+        return snap;
+    }
+
+    private static NodeInfo parse(String[] p, int from) {
+        if (p.length < from + 4 || p[from].equals("NULL"))
+            return null;
+        BigInteger id = new BigInteger(p[from]);
+        String ip = p[from + 1];
+        int port = Integer.parseInt(p[from + 2]);
+        if (!id.equals(HashUtil.hash(ip + ":" + port)))
+            return null;
+        return new NodeInfo(id, ip, port, Integer.parseInt(p[from + 3]));
+    }
+}